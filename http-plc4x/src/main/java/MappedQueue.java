@@ -0,0 +1,367 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A persistent FIFO queue, stored in a memory-mapped file of fixed size. <br>
+ * The file is a ring buffer: a 32-byte header (magic number, head and tail offsets, bytes used, item count, sequence
+ * number of the first item), followed by the items, each prefixed with its length. Items and header are written straight into the mapping, so adding or
+ * removing an item costs no system call: the OS writes dirty pages back on its own, and {@link #flush()} forces them to
+ * disk, e.g. at a regular interval rather than after each item. <br>
+ * The file never grows. When it is full, the {@link OverflowPolicy} decides whether the oldest items are dropped to
+ * make room, or the new one is rejected. Items are read with {@link #peek(int)}, and only removed with
+ * {@link #removeThrough(long)} once they have been dealt with: nothing is lost if the program stops in-between. <br>
+ * Each item gets a sequence number, one more than the item before it. Removal goes by sequence number rather than by
+ * count, so that items dropped by the overflow policy while a batch was being dealt with don't make it remove newer
+ * items which haven't been. <br>
+ * The header is only forced to disk by {@link #flush()}, so a power loss can leave a file whose header doesn't match
+ * its contents. A header which is inconsistent in itself is detected on opening: the queue then starts over empty, and
+ * {@link #wasReset()} tells so. An item which can't be read back is reported by {@link #peek(int)} with a
+ * {@link CorruptedItemException}, and can be removed like any other item.
+ */
+public class MappedQueue<T> implements Closeable {
+
+    /**
+     * Converts items to and from their binary representation in the queue.
+     */
+    public interface Codec<T> {
+        /**
+         * @return the number of bytes {@link #encode(Object, ByteBuffer)} will write for this item
+         */
+        int size(T item);
+
+        /**
+         * Writes the item at the buffer's current position
+         */
+        void encode(T item, ByteBuffer buffer);
+
+        /**
+         * Reads an item from the buffer, between its current position and its limit
+         */
+        T decode(ByteBuffer buffer);
+    }
+
+    /**
+     * Items read from the start of the queue, with the sequence number of the first one
+     */
+    public static class Batch<T> {
+        public final List<T> items;
+        public final long firstSequence;
+
+        Batch(List<T> items, long firstSequence) {
+            this.items = items;
+            this.firstSequence = firstSequence;
+        }
+
+        public boolean isEmpty() {
+            return items.isEmpty();
+        }
+
+        /**
+         * @return the sequence number of the last item of this batch
+         */
+        public long lastSequence() {
+            return firstSequence + items.size() - 1;
+        }
+    }
+
+    /**
+     * Thrown when the first item of a batch can't be read back, e.g. after a power loss left the file half-written
+     */
+    public static class CorruptedItemException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Sequence number of the item, which can be passed to {@link MappedQueue#removeThrough(long)}
+         */
+        public final long sequence;
+
+        CorruptedItemException(long sequence, Throwable cause) {
+            super("Item #" + sequence + " can't be read", cause);
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * What to do when an item doesn't fit in the queue anymore
+     */
+    public enum OverflowPolicy {
+        /**
+         * Drop the oldest items until there is enough room for the new one
+         */
+        DROP_OLDEST,
+        /**
+         * Keep the queue as it is, and reject the new item
+         */
+        REJECT_NEWEST
+    }
+
+    private static final int MAGIC = 0x52496f51; // "RIoQ"
+    private static final int HEADER_SIZE = 32;
+    private static final int HEAD = 4;
+    private static final int TAIL = 8;
+    private static final int USED = 12;
+    private static final int COUNT = 16;
+    private static final int SEQUENCE = 20;
+    private static final int LENGTH_SIZE = 4;
+    private static final int WRAP = -1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer file;
+    private final ByteBuffer data;
+    private final int capacity;
+    private final Codec<T> codec;
+    private final OverflowPolicy overflowPolicy;
+
+    private int head;
+    private int tail;
+    private int used;
+    private int count;
+    private long sequence;
+    private long dropped;
+    private boolean reset;
+
+    /**
+     * Opens the queue stored in the given file, or creates it.
+     *
+     * @param size
+     *            size of the file, in bytes. Must match the size of an existing file.
+     */
+    public MappedQueue(Path path, int size, Codec<T> codec, OverflowPolicy overflowPolicy) throws IOException {
+        if (size <= HEADER_SIZE + LENGTH_SIZE) {
+            throw new IllegalArgumentException("Queue size too small: " + size);
+        }
+        this.codec = codec;
+        this.overflowPolicy = overflowPolicy;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        final long existing = channel.size();
+        if (existing != 0 && existing != size) {
+            channel.close();
+            throw new IllegalArgumentException(
+                    "Queue file " + path + " has a size of " + existing + " bytes, expected " + size);
+        }
+        this.file = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        file.position(HEADER_SIZE);
+        this.data = file.slice();
+        this.capacity = size - HEADER_SIZE;
+
+        if (file.getInt(0) == MAGIC) {
+            head = file.getInt(HEAD);
+            tail = file.getInt(TAIL);
+            used = file.getInt(USED);
+            count = file.getInt(COUNT);
+            sequence = file.getLong(SEQUENCE);
+            if (!headerIsConsistent()) {
+                // Whatever is left in the file can't be located reliably: start over, keeping the numbering if we can
+                head = 0;
+                tail = 0;
+                used = 0;
+                count = 0;
+                sequence = Math.max(0, sequence);
+                reset = true;
+                writeHeader();
+            }
+        } else {
+            file.putInt(0, MAGIC);
+            writeHeader();
+        }
+    }
+
+    /**
+     * Adds an item at the end of the queue, applying the overflow policy if there isn't enough room for it.
+     *
+     * @return false if the item was rejected
+     */
+    public synchronized boolean offer(T item) {
+        final int size = codec.size(item);
+        final int needed = LENGTH_SIZE + size;
+        if (needed > capacity) {
+            throw new IllegalArgumentException("Item of " + size + " bytes can never fit in the queue");
+        }
+        while (required(needed) > capacity - used) {
+            if (overflowPolicy == OverflowPolicy.REJECT_NEWEST) {
+                dropped++;
+                return false;
+            }
+            removeFirst();
+            dropped++;
+        }
+
+        if (needed > capacity - tail) {
+            // Not enough room before the end of the file: mark the rest as unused, and continue at the start
+            if (capacity - tail >= LENGTH_SIZE) {
+                data.putInt(tail, WRAP);
+            }
+            used += capacity - tail;
+            tail = 0;
+        }
+        data.putInt(tail, size);
+        data.position(tail + LENGTH_SIZE);
+        codec.encode(item, data);
+        tail = (tail + needed) % capacity;
+        used += needed;
+        count++;
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * @return up to <code>max</code> items from the start of the queue, which are left in the queue. The batch ends
+     *         before the first item which can't be read back.
+     * @throws CorruptedItemException
+     *             if the very first item can't be read back
+     */
+    public synchronized Batch<T> peek(int max) {
+        final List<T> items = new ArrayList<>(Math.min(max, count));
+        int position = head;
+        for (int i = 0; i < Math.min(max, count); i++) {
+            position = skipWrap(position);
+            final int size = recordSize(position);
+            try {
+                if (size < 0) {
+                    throw new IllegalStateException("Invalid record length at offset " + position);
+                }
+                final ByteBuffer record = data.duplicate();
+                record.position(position + LENGTH_SIZE);
+                record.limit(position + LENGTH_SIZE + size);
+                items.add(codec.decode(record));
+            } catch (RuntimeException e) {
+                if (items.isEmpty()) {
+                    throw new CorruptedItemException(sequence, e);
+                }
+                break;
+            }
+            position = (position + LENGTH_SIZE + size) % capacity;
+        }
+        return new Batch<>(items, sequence);
+    }
+
+    /**
+     * Removes the items from the start of the queue, up to and including the one with the given sequence number. Items
+     * which are already gone, e.g. dropped by the overflow policy, are skipped.
+     *
+     * @return the number of items removed, including any following items which had to be discarded because they could
+     *         no longer be located
+     */
+    public synchronized int removeThrough(long lastSequence) {
+        final int before = count;
+        while (count > 0 && sequence <= lastSequence) {
+            removeFirst();
+        }
+        writeHeader();
+        return before - count;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return the number of items lost to the overflow policy since the queue was opened
+     */
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    /**
+     * @return true if the file's header was found inconsistent when the queue was opened, and its contents discarded
+     */
+    public boolean wasReset() {
+        return reset;
+    }
+
+    /**
+     * Forces all changes to disk. This doesn't lock the queue: items can be added and removed while the disk is busy,
+     * and their changes may or may not be included.
+     */
+    public void flush() {
+        file.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        file.force();
+        channel.close();
+    }
+
+    /**
+     * @return the number of free bytes needed to append a record of the given size, including any space skipped at the
+     *         end of the file
+     */
+    private int required(int needed) {
+        final boolean wrapped = tail < head || (tail == head && used > 0);
+        if (!wrapped && needed > capacity - tail) {
+            return capacity - tail + needed;
+        }
+        return needed;
+    }
+
+    private boolean headerIsConsistent() {
+        if (head < 0 || head >= capacity || tail < 0 || tail >= capacity || used < 0 || used > capacity || count < 0
+                || count > used / LENGTH_SIZE || sequence < 0) {
+            return false;
+        }
+        if (count == 0) {
+            // An empty queue always starts over at the beginning of the file
+            return used == 0 && head == 0 && tail == 0;
+        }
+        // The bytes in use go from head to tail, around the end of the file if needed
+        return used == (tail - head + capacity) % capacity || (used == capacity && tail == head);
+    }
+
+    /**
+     * @return the length of the record at the given position, or -1 if it can't be a valid length
+     */
+    private int recordSize(int position) {
+        final int size = data.getInt(position);
+        return size < 0 || size > capacity - position - LENGTH_SIZE ? -1 : size;
+    }
+
+    private int skipWrap(int position) {
+        if (capacity - position < LENGTH_SIZE || data.getInt(position) == WRAP) {
+            return 0;
+        }
+        return position;
+    }
+
+    private void removeFirst() {
+        final int position = skipWrap(head);
+        final int size = recordSize(position);
+        if (size < 0) {
+            // The next records can't be located anymore: discard them all
+            sequence += count;
+            head = 0;
+            tail = 0;
+            used = 0;
+            count = 0;
+            return;
+        }
+        used -= position == head ? 0 : capacity - head;
+        final int length = LENGTH_SIZE + size;
+        head = (position + length) % capacity;
+        used -= length;
+        count--;
+        sequence++;
+        if (count == 0) {
+            // Empty: start over at the beginning of the file, so that the next items needn't wrap
+            head = 0;
+            tail = 0;
+            used = 0;
+        }
+    }
+
+    private void writeHeader() {
+        file.putInt(HEAD, head);
+        file.putInt(TAIL, tail);
+        file.putInt(USED, used);
+        file.putInt(COUNT, count);
+        file.putLong(SEQUENCE, sequence);
+    }
+}
@@ -0,0 +1,89 @@
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import akka.actor.ActorSystem;
+
+/**
+ * A fixed-size thread pool which keeps track of how busy its threads are, including tasks which are still running: a
+ * thread stuck in a long call shows up as busy right away, not only once the call returns. <br>
+ * Its queue is bounded too: once all threads are busy and the queue is full, new tasks are rejected with a
+ * {@link java.util.concurrent.RejectedExecutionException}, instead of piling up behind the stuck ones. <br>
+ * Dispatchers configured with the {@link MeteredExecutorConfigurator} run on one of these. Each is registered under its
+ * dispatcher's id, so that {@link #logEvery(ActorSystem, Duration)} can regularly report on all of them.
+ */
+public class MeteredExecutor extends ThreadPoolExecutor {
+
+    private static final Map<String, MeteredExecutor> executors = new ConcurrentHashMap<>();
+
+    private final String id;
+    private final int poolSize;
+    private final LongAdder busyNanos = new LongAdder();
+    // Start time of the task each thread is running, or 0 if it is idle
+    private final Map<Thread, AtomicLong> taskStarts = new ConcurrentHashMap<>();
+    private long lastBusyNanos;
+    private long lastReport = System.nanoTime();
+
+    MeteredExecutor(String id, int poolSize, int queueCapacity, ThreadFactory threadFactory) {
+        super(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueCapacity), threadFactory);
+        this.id = id;
+        this.poolSize = poolSize;
+        executors.put(id, this);
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        taskStarts.computeIfAbsent(t, thread -> new AtomicLong()).set(System.nanoTime());
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        final AtomicLong start = taskStarts.get(Thread.currentThread());
+        busyNanos.add(System.nanoTime() - start.get());
+        start.set(0);
+    }
+
+    @Override
+    protected void terminated() {
+        executors.remove(id, this);
+    }
+
+    /**
+     * @return the utilisation of this pool since the previous report (the fraction of time its threads were busy), as
+     *         well as its current backlog.
+     */
+    public synchronized String report() {
+        final long now = System.nanoTime();
+        long busy = busyNanos.sum();
+        for (AtomicLong start : taskStarts.values()) {
+            final long started = start.get();
+            if (started != 0) {
+                busy += now - started;
+            }
+        }
+        // A task completing while we add things up may be counted twice, or not at all: stay within bounds
+        final double utilisation = Math.max(0, Math.min(1,
+                (double) (busy - lastBusyNanos) / ((now - lastReport) * poolSize)));
+        lastBusyNanos = busy;
+        lastReport = now;
+        return String.format("%s: utilisation=%.1f%%, active=%d/%d, queued=%d, completed=%d", id, utilisation * 100,
+                getActiveCount(), poolSize, getQueue().size(), getCompletedTaskCount());
+    }
+
+    /**
+     * Logs a {@link #report()} for each metered dispatcher at a regular interval.
+     */
+    public static void logEvery(ActorSystem system, Duration interval) {
+        system.scheduler().schedule(interval, interval, () -> {
+            for (MeteredExecutor executor : executors.values()) {
+                system.log().info(executor.report());
+            }
+        }, system.dispatcher());
+    }
+}
@@ -0,0 +1,44 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import com.typesafe.config.Config;
+
+import akka.dispatch.DispatcherPrerequisites;
+import akka.dispatch.ExecutorServiceConfigurator;
+import akka.dispatch.ExecutorServiceFactory;
+
+/**
+ * Lets Akka dispatchers run on a {@link MeteredExecutor}. Use it in a dispatcher's configuration as follows:
+ *
+ * <pre>
+ * my-dispatcher {
+ *   type = Dispatcher
+ *   executor = "MeteredExecutorConfigurator"
+ *   metered-executor {
+ *     pool-size = 1
+ *     queue-capacity = 16
+ *   }
+ * }
+ * </pre>
+ */
+public class MeteredExecutorConfigurator extends ExecutorServiceConfigurator {
+
+    private final int poolSize;
+    private final int queueCapacity;
+
+    public MeteredExecutorConfigurator(Config config, DispatcherPrerequisites prerequisites) {
+        super(config, prerequisites);
+        this.poolSize = config.getInt("metered-executor.pool-size");
+        this.queueCapacity = config.getInt("metered-executor.queue-capacity");
+    }
+
+    @Override
+    public ExecutorServiceFactory createExecutorServiceFactory(String id, ThreadFactory threadFactory) {
+        return new ExecutorServiceFactory() {
+            @Override
+            public ExecutorService createExecutorService() {
+                return new MeteredExecutor(id, poolSize, queueCapacity, threadFactory);
+            }
+        };
+    }
+}
@@ -3,6 +3,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import org.apache.plc4x.java.opm.PlcEntity;
 import org.apache.plc4x.java.opm.PlcField;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 /**
@@ -46,6 +47,30 @@ public class MyStatusLights {
     @PlcField("%Q0.2:BOOL")
     public boolean green;
 
+    /**
+     * Stores the 3 lights as the bits of a single byte, e.g. in a {@link MappedQueue}.
+     */
+    static final MappedQueue.Codec<MyStatusLights> CODEC = new MappedQueue.Codec<MyStatusLights>() {
+        @Override
+        public int size(MyStatusLights item) {
+            return 1;
+        }
+
+        @Override
+        public void encode(MyStatusLights item, ByteBuffer buffer) {
+            buffer.put((byte) ((item.red ? 4 : 0) | (item.yellow ? 2 : 0) | (item.green ? 1 : 0)));
+        }
+
+        @Override
+        public MyStatusLights decode(ByteBuffer buffer) {
+            final byte bits = buffer.get();
+            if ((bits & ~7) != 0) {
+                throw new IllegalArgumentException("Invalid status lights: " + bits);
+            }
+            return new MyStatusLights((bits & 4) != 0, (bits & 2) != 0, (bits & 1) != 0);
+        }
+    };
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
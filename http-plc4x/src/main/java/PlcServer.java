@@ -7,19 +7,26 @@ import akka.http.javadsl.ServerBinding;
 import akka.http.javadsl.marshallers.jackson.Jackson;
 import akka.http.javadsl.model.HttpRequest;
 import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
 import akka.http.javadsl.server.AllDirectives;
 import akka.http.javadsl.server.Route;
 import akka.stream.ActorMaterializer;
 import akka.stream.Materializer;
 import akka.stream.javadsl.Flow;
+import com.typesafe.config.Config;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.SystemConfiguration;
 import org.apache.plc4x.java.opm.OPMException;
 import org.apache.plc4x.java.opm.PlcEntityManager;
 import org.apache.plc4x.java.utils.connectionpool.PooledPlcDriverManager;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Supplier;
 
 /**
@@ -27,7 +34,8 @@ import java.util.function.Supplier;
  * <li> /controlbox: Responds to GET requests only. A JSON representation of our device will be sent as a response.
  * </li>
  * <li> /status: Responds to POST requests containing a Status Lights object. Sets the corresponding outputs on our PLC
- * to high (42V) or low (0V) accordingly.</li>
+ * to high (42V) or low (0V) accordingly. Status changes are stored, and forwarded to the PLC as soon as it can be
+ * reached.</li>
  * </ul>
  */
 public class PlcServer extends AllDirectives {
@@ -38,12 +46,34 @@ public class PlcServer extends AllDirectives {
     // PLC4X-Specific connection URI:
     static final String connectionString = "s7://192.168.1.222/0/2?controller-type=S7_300";
 
-    public static void main(String[] args) throws InterruptedException {
+    // PLC reads and writes block until the PLC responds: they run on this bounded pool, not on Akka's dispatcher
+    private final Executor plcIo;
+
+    // Status changes waiting to be written to the PLC, stored on disk while the PLC can't be reached
+    private final StoreAndForward<MyStatusLights> outbox;
+
+    PlcServer(Executor plcIo, Config outboxConfig) throws IOException {
+        this.plcIo = plcIo;
+        MappedQueue<MyStatusLights> queue = new MappedQueue<>(
+                Paths.get(outboxConfig.getString("file")),
+                Math.toIntExact(outboxConfig.getBytes("size")),
+                MyStatusLights.CODEC,
+                MappedQueue.OverflowPolicy.valueOf(outboxConfig.getString("overflow-policy")));
+        this.outbox = new StoreAndForward<>(queue, outboxConfig);
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
         ActorSystem system = ActorSystem.create("plc-server");
         Materializer mat = ActorMaterializer.create(system);
         Http http = Http.get(system);
 
-        final Flow<HttpRequest, HttpResponse, NotUsed> routeFlow = new PlcServer().createRoute().flow(system, mat);
+        final Executor plcIo = system.dispatchers().lookup("plc-io-dispatcher");
+        MeteredExecutor.logEvery(system, system.settings().config().getDuration("plc-server.metrics-interval"));
+
+        final PlcServer server = new PlcServer(plcIo, system.settings().config().getConfig("plc-server.outbox"));
+        server.outbox.start(system, mat, server::writeStatusLights);
+
+        final Flow<HttpRequest, HttpResponse, NotUsed> routeFlow = server.createRoute().flow(system, mat);
         final CompletionStage<ServerBinding> binding = http.bindAndHandle(routeFlow,
                 ConnectHttp.toHost("localhost", 8080), mat);
 
@@ -70,21 +100,28 @@ public class PlcServer extends AllDirectives {
     }
 
     /**
-     * Asynchronously fetches the value of the inputs mapped within the 'MyControlBox' class and returns them.
+     * Asynchronously fetches the value of the inputs mapped within the 'MyControlBox' class and returns them. The read
+     * is executed on the PLC I/O pool. If too many reads are already waiting for it, the request is rejected with an
+     * HTTP 503.
      *
      * @return an Akka HTTP Route object
      */
     private Route getControlBoxState() {
-        CompletionStage<MyControlBox> future = CompletableFuture.supplyAsync(new Supplier<MyControlBox>() {
-            @Override
-            public MyControlBox get() {
-                try {
-                    return entityManager.read(MyControlBox.class, connectionString);
-                } catch (OPMException e) {
-                    throw new RuntimeException(e);
+        final CompletionStage<MyControlBox> future;
+        try {
+            future = CompletableFuture.supplyAsync(new Supplier<MyControlBox>() {
+                @Override
+                public MyControlBox get() {
+                    try {
+                        return entityManager.read(MyControlBox.class, connectionString);
+                    } catch (OPMException e) {
+                        throw new RuntimeException(e);
+                    }
                 }
-            }
-        });
+            }, plcIo);
+        } catch (RejectedExecutionException e) {
+            return complete(StatusCodes.SERVICE_UNAVAILABLE, "Too many requests waiting for the PLC");
+        }
 
         return onSuccess(future, done ->
                 completeOKWithFuture(future, Jackson.marshaller())
@@ -92,25 +129,45 @@ public class PlcServer extends AllDirectives {
     }
 
     /**
-     * Asynchronously sets the value of the outputs mapped in the 'MyStatusLights' class, and returns them.
+     * Queues the state of the outputs mapped in the 'MyStatusLights' class, to be written to the PLC as soon as
+     * possible, and returns it. If the queue is full, the request is rejected with an HTTP 503.
      *
      * @return an Akka HTTP Route object
      */
     private Route postStatusLights(MyStatusLights state) {
-        CompletionStage<MyStatusLights> future = CompletableFuture.supplyAsync(new Supplier<MyStatusLights>() {
-            @Override
-            public MyStatusLights get() {
-                try {
-                    return entityManager.write(MyStatusLights.class, connectionString, state);
-                } catch (OPMException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        });
+        if (!outbox.offer(state)) {
+            return complete(StatusCodes.SERVICE_UNAVAILABLE, "Too many status changes waiting for the PLC");
+        }
+        return complete(StatusCodes.ACCEPTED, state, Jackson.marshaller());
+    }
 
-        return onSuccess(future, done ->
-                completeOKWithFuture(future, Jackson.marshaller())
-        );
+    /**
+     * Asynchronously sets the value of the outputs mapped in the 'MyStatusLights' class, for each state of the batch
+     * in turn. The writes are executed on the PLC I/O pool.
+     *
+     * @return a Future which completes once all states have been written, or fails if they couldn't be, including
+     *         when the PLC I/O pool is too busy to accept them
+     */
+    private CompletionStage<Done> writeStatusLights(List<MyStatusLights> batch) {
+        try {
+            return CompletableFuture.supplyAsync(new Supplier<Done>() {
+                @Override
+                public Done get() {
+                    try {
+                        for (MyStatusLights state : batch) {
+                            entityManager.write(MyStatusLights.class, connectionString, state);
+                        }
+                        return Done.getInstance();
+                    } catch (OPMException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, plcIo);
+        } catch (RejectedExecutionException e) {
+            final CompletableFuture<Done> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
     }
 
 }
@@ -0,0 +1,119 @@
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+import com.typesafe.config.Config;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.event.LoggingAdapter;
+import akka.stream.Materializer;
+import akka.stream.javadsl.RestartSource;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+
+/**
+ * Forwards items to a link (a PLC, a remote server...) which may be unavailable at times. <br>
+ * Items are first stored in a {@link MappedQueue}, then drained from it in batches, one batch at a time, in order. A
+ * batch is only removed from the queue once the link has accepted it: if the link fails, the same batch is retried
+ * after a backoff, which doubles after each failure. Items may therefore be delivered more than once, but never out of
+ * order. <br>
+ * After an outage, the backlog is drained at most one batch per drain interval, and never faster than the link accepts
+ * it. The queue is flushed to disk at a regular interval, not after each item. <br>
+ * An item which can't be read back from the queue, e.g. after a power loss, is logged, counted and removed, and
+ * draining carries on with the next one (if it can still be located). Should the draining stream fail nevertheless, Akka's RestartSource logs the
+ * failure and restarts it, with the same backoff as for link failures.
+ */
+public class StoreAndForward<T> {
+
+    private final MappedQueue<T> queue;
+    private final int batchSize;
+    private final Duration drainInterval;
+    private final Duration flushInterval;
+    private final String flushDispatcher;
+    private final long minBackoff;
+    private final long maxBackoff;
+
+    // Only updated by the draining stream
+    private long corrupted;
+    private volatile long backoff;
+    private volatile long nextAttempt = System.nanoTime();
+
+    public StoreAndForward(MappedQueue<T> queue, Config config) {
+        this.queue = queue;
+        this.batchSize = config.getInt("batch-size");
+        this.drainInterval = config.getDuration("drain-interval");
+        this.flushInterval = config.getDuration("flush-interval");
+        this.flushDispatcher = config.getString("flush-dispatcher");
+        this.minBackoff = config.getDuration("min-backoff").toNanos();
+        this.maxBackoff = config.getDuration("max-backoff").toNanos();
+        this.backoff = minBackoff;
+    }
+
+    /**
+     * Stores an item, to be forwarded as soon as possible.
+     *
+     * @return false if the queue's overflow policy rejected the item
+     */
+    public boolean offer(T item) {
+        return queue.offer(item);
+    }
+
+    /**
+     * Starts forwarding the stored items.
+     *
+     * @param link
+     *            sends a batch of items over the link. The returned stage completes once the whole batch has been
+     *            accepted, or fails if it could not be.
+     */
+    public void start(ActorSystem system, Materializer mat, Function<List<T>, CompletionStage<Done>> link) {
+        final LoggingAdapter log = system.log();
+        if (queue.wasReset()) {
+            log.warning("The queue's header was inconsistent, its contents have been discarded");
+        }
+
+        RestartSource.withBackoff(Duration.ofNanos(minBackoff), Duration.ofNanos(maxBackoff), 0.2, () ->
+                Source.tick(Duration.ZERO, drainInterval, NotUsed.getInstance())
+                        .filter(tick -> System.nanoTime() - nextAttempt >= 0)
+                        .map(tick -> peek(log))
+                        .filter(batch -> !batch.isEmpty())
+                        .mapAsync(1, batch -> link.apply(batch.items).handle((done, failure) -> {
+                            if (failure == null) {
+                                // Only what was sent: older items may have been dropped meanwhile, to make room
+                                queue.removeThrough(batch.lastSequence());
+                                backoff = minBackoff;
+                            } else {
+                                log.warning("Forwarding failed, {} items queued, retrying in {}ms: {}", queue.size(),
+                                        backoff / 1_000_000, failure.getMessage());
+                                nextAttempt = System.nanoTime() + backoff;
+                                backoff = Math.min(backoff * 2, maxBackoff);
+                            }
+                            return Done.getInstance();
+                        })))
+                .runWith(Sink.ignore(), mat);
+
+        // Flushing blocks until the disk is done writing: keep it off the default dispatcher, and off the dispatcher
+        // doing the link's I/O, which may be all busy waiting for an unreachable link
+        system.scheduler().schedule(flushInterval, flushInterval, queue::flush,
+                system.dispatchers().lookup(flushDispatcher));
+    }
+
+    /**
+     * @return the next batch to forward, after removing any item at the start of the queue which can't be read back
+     */
+    private MappedQueue.Batch<T> peek(LoggingAdapter log) {
+        while (true) {
+            try {
+                return queue.peek(batchSize);
+            } catch (MappedQueue.CorruptedItemException e) {
+                // Usually just this item, but the following ones are lost too if its length is what got corrupted
+                final int discarded = queue.removeThrough(e.sequence);
+                corrupted += discarded;
+                log.error(e.getCause(), "Discarded {} item(s) from #{}, which can't be read ({} discarded so far)",
+                        discarded, e.sequence, corrupted);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.typesafe.config.Config;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.ActorMaterializerSettings;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Source;
+import riot.GPIO.State;
+
+/**
+ * Measures how quickly an input edge propagates to an output through a stream shaped like the one in
+ * {@link Application}: <code>gpio15.map(...).to(gpio9)</code>. <br>
+ * The pins are simulated (see {@link SimulatedGpio}), so this runs on any machine. As with RIoT, edges go through
+ * the pins' device actors on their way in and out of the stream. A virtual push-button, pin 14, is wired to input pin
+ * 15, and toggled at a fixed rate by a dedicated thread. The time between each edge on pin 15 and the corresponding
+ * edge on pin 9 is recorded. <br>
+ * Each combination of device actor dispatcher, stream dispatcher, materializer input buffer size and async boundary
+ * configured in the <code>latency-benchmark</code> section of application.conf is run at increasing edge rates, until
+ * the stream can't keep up anymore. Latency percentiles are printed for each run, followed by the maximum sustainable
+ * edge rate of each combination. A run is invalid if the injecting thread itself couldn't reach the requested rate:
+ * higher rates are then not tried.
+ */
+public class LatencyBenchmark {
+
+    private static final int BUTTON = 14;
+    private static final int INPUT = 15;
+    private static final int OUTPUT = 9;
+
+    public static void main(String[] args) throws Exception {
+        ActorSystem system = ActorSystem.create("LatencyBenchmark");
+        Config config = system.settings().config().getConfig("latency-benchmark");
+
+        System.out.printf("%-45s %-45s %6s %5s %8s %8s %-8s %9s %9s %9s %9s %9s%n", "device dispatcher",
+                "stream dispatcher", "buffer", "async", "edges/s", "achieved", "result", "p50 (us)", "p90 (us)",
+                "p99 (us)", "p99.9(us)", "max (us)");
+
+        StringBuilder summary = new StringBuilder();
+        for (String deviceDispatcher : config.getStringList("device-dispatchers")) {
+            for (String dispatcher : config.getStringList("dispatchers")) {
+                for (int inputBuffer : config.getIntList("input-buffer-sizes")) {
+                    for (boolean async : config.getBooleanList("async-boundary")) {
+                        long sustainable = 0;
+                        for (long rate : config.getLongList("edge-rates")) {
+                            Run run = new Run(system, config, deviceDispatcher, dispatcher, inputBuffer, async, rate);
+                            run.execute();
+                            System.out.println(run);
+                            if (run.overrun || run.invalid) {
+                                break;
+                            }
+                            sustainable = rate;
+                        }
+                        summary.append(String.format("%-45s %-45s %6d %5s %8d%n", deviceDispatcher, dispatcher,
+                                inputBuffer, async, sustainable));
+                    }
+                }
+            }
+        }
+
+        System.out.printf("%nMaximum sustainable edge rate:%n%-45s %-45s %6s %5s %8s%n%s", "device dispatcher",
+                "stream dispatcher", "buffer", "async", "edges/s", summary);
+        system.terminate();
+    }
+
+    /**
+     * A single benchmark run, at a fixed edge rate, with one set of stream settings.
+     */
+    private static class Run {
+        private final ActorSystem system;
+        private final String deviceDispatcher;
+        private final String dispatcher;
+        private final int inputBuffer;
+        private final boolean async;
+        private final long rate;
+        private final int sourceBuffer;
+        private final int warmupEdges;
+        private final double rateTolerance;
+        private final long[] injected;
+        private final long[] received;
+        private final AtomicInteger receivedCount = new AtomicInteger();
+        private int injectedCount;
+        private boolean overrun;
+        private boolean invalid;
+        private double achievedRate;
+        private long[] latencies = new long[0];
+
+        Run(ActorSystem system, Config config, String deviceDispatcher, String dispatcher, int inputBuffer,
+                boolean async, long rate) {
+            this.system = system;
+            this.deviceDispatcher = deviceDispatcher;
+            this.dispatcher = dispatcher;
+            this.inputBuffer = inputBuffer;
+            this.async = async;
+            this.rate = rate;
+            this.sourceBuffer = config.getInt("source-buffer-size");
+            this.rateTolerance = config.getDouble("rate-tolerance");
+            this.warmupEdges = (int) (rate * config.getDuration("warmup").toNanos() / 1_000_000_000L);
+            final int edges = warmupEdges + (int) (rate * config.getDuration("duration").toNanos() / 1_000_000_000L);
+            // Allocate everything up-front, so that recording doesn't disturb the measurement
+            this.injected = new long[edges];
+            this.received = new long[edges];
+        }
+
+        void execute() throws Exception {
+            SimulatedGpio board = new SimulatedGpio(system, deviceDispatcher).wire(BUTTON, INPUT);
+            // Inputs start LOW, so the inverted output starts HIGH: every input edge then causes an output edge
+            board.pin(OUTPUT).set(State.HIGH);
+            board.pin(INPUT).onEdge((level, nanoTime) -> injected[injectedCount++] = nanoTime);
+            board.pin(OUTPUT).onEdge((level, nanoTime) -> {
+                // Only the stream writes here: publish the timestamp before the new count
+                final int i = receivedCount.get();
+                if (i < received.length) {
+                    received[i] = nanoTime;
+                }
+                receivedCount.lazySet(i + 1);
+            });
+
+            ActorMaterializer mat = ActorMaterializer.create(ActorMaterializerSettings.create(system)
+                    .withDispatcher(dispatcher)
+                    .withInputBuffer(inputBuffer, inputBuffer), system);
+
+            // The same stream as in Application, between simulated pins:
+            Source<State, NotUsed> gpio15 = board.in(INPUT, sourceBuffer);
+            Source<State, NotUsed> inverted = gpio15.map(state -> state == State.LOW ? State.HIGH : State.LOW);
+            CompletionStage<Done> termination = (async ? inverted.async() : inverted)
+                    .watchTermination(Keep.right())
+                    .to(board.out(OUTPUT))
+                    .run(mat);
+
+            inject(board.pin(BUTTON));
+
+            // The injecting thread may have fallen behind, then caught up in bursts: check the rate it really achieved
+            achievedRate = (injected.length - 1) * 1_000_000_000.0 / (injected[injected.length - 1] - injected[0]);
+            invalid = achievedRate < rate * (1 - rateTolerance);
+
+            // Give the stream a moment to drain, unless it has already failed
+            final long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            final CompletableFuture<Done> terminated = termination.toCompletableFuture();
+            while (receivedCount.get() < injected.length && !terminated.isDone()
+                    && System.nanoTime() < drainDeadline) {
+                Thread.sleep(1);
+            }
+            overrun = terminated.isCompletedExceptionally() || receivedCount.get() < injected.length;
+            mat.shutdown();
+            board.shutdown();
+
+            final int delivered = Math.min(receivedCount.get(), injected.length);
+            latencies = new long[Math.max(0, delivered - warmupEdges)];
+            for (int i = warmupEdges; i < delivered; i++) {
+                latencies[i - warmupEdges] = received[i] - injected[i];
+            }
+            Arrays.sort(latencies);
+        }
+
+        /**
+         * Toggles the given pin at the configured rate, from the current thread. Deadlines are computed from the
+         * previous one, so that timing errors don't accumulate.
+         */
+        private void inject(SimulatedGpio.Pin button) {
+            final long interval = 1_000_000_000L / rate;
+            long deadline = System.nanoTime();
+            for (int i = 0; i < injected.length; i++) {
+                deadline += interval;
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 100_000) {
+                    LockSupport.parkNanos(remaining - 100_000);
+                }
+                while (deadline - System.nanoTime() > 0) {
+                    // Busy-wait for the last few microseconds
+                }
+                button.set(State.TOGGLE);
+            }
+        }
+
+        private double percentile(double fraction) {
+            if (latencies.length == 0) {
+                return Double.NaN;
+            }
+            final int index = (int) Math.min(latencies.length - 1, Math.ceil(latencies.length * fraction) - 1);
+            return latencies[Math.max(0, index)] / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-45s %-45s %6d %5s %8d %8.0f %-8s %9.1f %9.1f %9.1f %9.1f %9.1f", deviceDispatcher,
+                    dispatcher, inputBuffer, async, rate, achievedRate,
+                    invalid ? "INVALID" : overrun ? "OVERRUN" : "ok", percentile(0.5), percentile(0.9),
+                    percentile(0.99), percentile(0.999), percentile(1.0));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.Terminated;
+import akka.stream.OverflowStrategy;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import riot.GPIO.State;
+
+/**
+ * A simulated GPIO backend, for running GPIO streams on a machine without a Raspberry Pi attached. <br>
+ * Virtual pins are created on first use, and start LOW. Output pins can be wired to input pins, just like with a piece
+ * of wire on a breadboard: a change on one is immediately seen on the other. Streams are built the same way as with
+ * RIoT's {@link riot.GPIO} class: {@link #in(int, int)} returns a Source, {@link #out(int)} a Sink. As with RIoT, each
+ * pin used by a stream is handled by a device actor, running on a configurable dispatcher: states go through its
+ * mailbox on their way between the pin and the stream. A pin can have both an output and an input device, e.g. to read
+ * back the level a stream drives it to.
+ */
+public class SimulatedGpio {
+
+    /**
+     * Notified of every change of a pin's level, on the thread that caused it.
+     */
+    public interface EdgeListener {
+        void edge(State level, long nanoTime);
+    }
+
+    /**
+     * A virtual GPIO pin
+     */
+    public static class Pin {
+        private final int address;
+        private final List<EdgeListener> listeners = new CopyOnWriteArrayList<>();
+        private volatile State level = State.LOW;
+
+        Pin(int address) {
+            this.address = address;
+        }
+
+        public State level() {
+            return level;
+        }
+
+        /**
+         * Sets the level of this pin. TOGGLE inverts it. Listeners are only notified if the level actually changes.
+         */
+        public synchronized void set(State state) {
+            final State next = state == State.TOGGLE ? (level == State.HIGH ? State.LOW : State.HIGH) : state;
+            if (next == level) {
+                return;
+            }
+            level = next;
+            final long now = System.nanoTime();
+            for (EdgeListener listener : listeners) {
+                listener.edge(next, now);
+            }
+        }
+
+        public void onEdge(EdgeListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public String toString() {
+            return "Pin [" + address + "=" + level + "]";
+        }
+    }
+
+    /**
+     * Device actor for an output pin: sets the pin to each state it receives, like RIoT's GPIO output actors.
+     */
+    public static class OutputDevice extends AbstractActor {
+        private final Pin pin;
+
+        public OutputDevice(Pin pin) {
+            this.pin = pin;
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(State.class, pin::set)
+                    .matchAny(message -> {
+                        // End-of-stream messages: the pin keeps its level
+                    })
+                    .build();
+        }
+    }
+
+    /**
+     * Device actor for an input pin: forwards each new level of the pin to the streams reading from it, like RIoT's
+     * GPIO input actors. Streams stop being notified once they have terminated.
+     */
+    public static class InputDevice extends AbstractActor {
+        private final List<ActorRef> subscribers = new ArrayList<>();
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(ActorRef.class, subscriber -> {
+                        subscribers.add(subscriber);
+                        context().watch(subscriber);
+                    })
+                    .match(Terminated.class, terminated -> subscribers.remove(terminated.actor()))
+                    .match(State.class, level -> {
+                        for (ActorRef subscriber : subscribers) {
+                            subscriber.tell(level, self());
+                        }
+                    })
+                    .build();
+        }
+    }
+
+    private final ActorSystem system;
+    private final String deviceDispatcher;
+    private final Map<Integer, Pin> pins = new ConcurrentHashMap<>();
+    private final Map<Integer, ActorRef> outputs = new ConcurrentHashMap<>();
+    private final Map<Integer, ActorRef> inputs = new ConcurrentHashMap<>();
+
+    /**
+     * @param deviceDispatcher
+     *            the dispatcher the pins' device actors run on
+     */
+    public SimulatedGpio(ActorSystem system, String deviceDispatcher) {
+        this.system = system;
+        this.deviceDispatcher = deviceDispatcher;
+    }
+
+    /**
+     * @return the virtual pin with the given number, creating it if needed
+     */
+    public Pin pin(int address) {
+        return pins.computeIfAbsent(address, Pin::new);
+    }
+
+    /**
+     * Connects two virtual pins: every change of the first pin's level is applied to the second one.
+     */
+    public SimulatedGpio wire(int from, int to) {
+        final Pin target = pin(to);
+        pin(from).onEdge((level, nanoTime) -> target.set(level));
+        return this;
+    }
+
+    /**
+     * @return a Sink sending each state it receives to the given pin's device actor, which then sets the pin
+     */
+    public Sink<State, NotUsed> out(int address) {
+        final ActorRef device = outputs.computeIfAbsent(address, a -> system.actorOf(
+                Props.create(OutputDevice.class, pin(a)).withDispatcher(deviceDispatcher)));
+        return Sink.<State> actorRef(device, Done.getInstance());
+    }
+
+    /**
+     * @param bufferSize
+     *            number of edges to buffer while downstream is slower than the pin. The stream fails once this buffer
+     *            overflows, rather than silently dropping edges.
+     * @return a Source emitting the new level of the given pin whenever it changes, as reported by the pin's device
+     *         actor
+     */
+    public Source<State, NotUsed> in(int address, int bufferSize) {
+        final ActorRef device = inputs.computeIfAbsent(address, a -> {
+            final ActorRef actor = system.actorOf(Props.create(InputDevice.class).withDispatcher(deviceDispatcher));
+            pin(a).onEdge((level, nanoTime) -> actor.tell(level, ActorRef.noSender()));
+            return actor;
+        });
+        return Source.<State> actorRef(bufferSize, OverflowStrategy.fail()).mapMaterializedValue(ref -> {
+            device.tell(ref, ActorRef.noSender());
+            return NotUsed.getInstance();
+        });
+    }
+
+    /**
+     * Stops the device actors of all pins.
+     */
+    public void shutdown() {
+        for (ActorRef device : outputs.values()) {
+            system.stop(device);
+        }
+        for (ActorRef device : inputs.values()) {
+            system.stop(device);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Records how late each edge produced by a {@link WaveformGenerator} was, compared to its scheduled time. <br>
+ * All storage is allocated up-front, so that recording never triggers a garbage collection. Only the generator's timing
+ * thread records values: a {@link #snapshot()} taken from another thread while the generator is running is therefore
+ * approximate, which is good enough for monitoring purposes.
+ */
+public class JitterStats {
+
+    /**
+     * Latencies are counted in buckets of one microsecond, up to this value. Later edges go to the last bucket.
+     */
+    private static final int BUCKETS = 2048;
+
+    private final long[] histogram = new long[BUCKETS + 1];
+    private long count;
+    private long sum;
+    private long max;
+    private long resyncs;
+
+    /**
+     * Records the lateness of one edge, in nanoseconds.
+     */
+    void record(long latenessNanos) {
+        final long micros = Math.max(0, latenessNanos) / 1000;
+        histogram[(int) Math.min(micros, BUCKETS)]++;
+        count++;
+        sum += latenessNanos;
+        if (latenessNanos > max) {
+            max = latenessNanos;
+        }
+    }
+
+    /**
+     * Records that the generator fell more than a whole period behind schedule, and skipped ahead instead of catching
+     * up with a burst of short pulses.
+     */
+    void recordResync() {
+        resyncs++;
+    }
+
+    /**
+     * @return a copy of the statistics gathered so far
+     */
+    public Snapshot snapshot() {
+        // Read the totals first, then count the edges from the copied histogram itself: edges recorded in-between
+        // must not make the percentiles look for more edges than the copy holds.
+        final long total = count;
+        final long totalNanos = sum;
+        final long maxNanos = max;
+        final long[] copy = histogram.clone();
+        long n = 0;
+        for (long bucket : copy) {
+            n += bucket;
+        }
+        return new Snapshot(n, total == 0 ? 0 : totalNanos / total, percentile(copy, n, 0.50),
+                percentile(copy, n, 0.99), percentile(copy, n, 0.999), maxNanos, resyncs);
+    }
+
+    private static long percentile(long[] histogram, long count, double fraction) {
+        final long rank = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return i * 1000L;
+            }
+        }
+        return BUCKETS * 1000L;
+    }
+
+    /**
+     * Edge lateness statistics, all in nanoseconds. Percentiles have a resolution of one microsecond.
+     */
+    public static class Snapshot {
+        public final long edges;
+        public final long mean;
+        public final long p50;
+        public final long p99;
+        public final long p999;
+        public final long max;
+        public final long resyncs;
+
+        Snapshot(long edges, long mean, long p50, long p99, long p999, long max, long resyncs) {
+            this.edges = edges;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+            this.resyncs = resyncs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Jitter [edges=%d, mean=%dus, p50=%dus, p99=%dus, p99.9=%dus, max=%dus, resyncs=%d]",
+                    edges, mean / 1000, p50 / 1000, p99 / 1000, p999 / 1000, max / 1000, resyncs);
+        }
+    }
+}
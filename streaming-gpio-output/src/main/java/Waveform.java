@@ -0,0 +1,114 @@
+import java.time.Duration;
+import java.util.Arrays;
+
+import riot.GPIO.State;
+
+/**
+ * Describes what a {@link WaveformGenerator} should output on its pin: a constant level, a PWM signal (given its
+ * frequency and duty cycle), or an explicit pulse schedule which is repeated indefinitely. <br>
+ * Waveforms are immutable parameter objects: they are what travels through an Akka Stream, while the edges themselves
+ * are produced by the generator's own timing thread.
+ */
+public final class Waveform {
+
+    /**
+     * Shortest segment the generator is asked to produce. Anything shorter is below what a JVM on a Raspberry Pi can
+     * reliably time, and is clamped (for PWM) or rejected (for pulse schedules).
+     */
+    static final long MIN_SEGMENT_NANOS = 10_000;
+
+    /**
+     * Level of the pin at the start of each period
+     */
+    final boolean initiallyHigh;
+
+    /**
+     * Duration of each segment in nanoseconds. The level alternates after each segment, starting with
+     * {@link #initiallyHigh}. An empty array means a constant level.
+     */
+    final long[] segments;
+
+    /**
+     * Sum of all segments, in nanoseconds
+     */
+    final long period;
+
+    private Waveform(boolean initiallyHigh, long[] segments) {
+        this.initiallyHigh = initiallyHigh;
+        this.segments = segments;
+        this.period = Arrays.stream(segments).sum();
+    }
+
+    /**
+     * A constant level: the pin is set once, and left alone until another waveform is requested.
+     */
+    public static Waveform constant(State level) {
+        return new Waveform(toLevel(level), new long[0]);
+    }
+
+    /**
+     * A PWM signal. Duty cycles so close to 0 or 1 that one of the two segments would be shorter than
+     * {@link #MIN_SEGMENT_NANOS} are output as a constant level instead.
+     *
+     * @param frequency
+     *            in Hertz
+     * @param dutyCycle
+     *            fraction of each period during which the pin is high, between 0 and 1
+     */
+    public static Waveform pwm(double frequency, double dutyCycle) {
+        if (frequency <= 0) {
+            throw new IllegalArgumentException("Frequency must be positive: " + frequency);
+        }
+        if (dutyCycle < 0 || dutyCycle > 1) {
+            throw new IllegalArgumentException("Duty cycle must be between 0 and 1: " + dutyCycle);
+        }
+        final long period = Math.round(1_000_000_000d / frequency);
+        final long high = Math.round(period * dutyCycle);
+        final long low = period - high;
+        if (high < MIN_SEGMENT_NANOS) {
+            return constant(State.LOW);
+        }
+        if (low < MIN_SEGMENT_NANOS) {
+            return constant(State.HIGH);
+        }
+        return new Waveform(true, new long[] { high, low });
+    }
+
+    /**
+     * An explicit pulse schedule, repeated indefinitely. The pin is set to the initial level for the duration of the
+     * first segment, then toggled at the end of each segment.
+     */
+    public static Waveform pulses(State initialLevel, Duration... segments) {
+        if (segments.length == 0 || segments.length % 2 != 0) {
+            throw new IllegalArgumentException("A pulse schedule needs an even, non-zero number of segments");
+        }
+        final long[] nanos = new long[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            nanos[i] = segments[i].toNanos();
+            if (nanos[i] < MIN_SEGMENT_NANOS) {
+                throw new IllegalArgumentException("Segment " + i + " is shorter than " + MIN_SEGMENT_NANOS + "ns");
+            }
+        }
+        return new Waveform(toLevel(initialLevel), nanos);
+    }
+
+    private static boolean toLevel(State state) {
+        switch (state) {
+        case HIGH:
+            return true;
+        case LOW:
+            return false;
+        default:
+            throw new IllegalArgumentException("A waveform must start HIGH or LOW, not " + state);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (segments.length == 0) {
+            return "Waveform [constant " + (initiallyHigh ? "HIGH" : "LOW") + "]";
+        }
+        return "Waveform [" + (initiallyHigh ? "HIGH" : "LOW") + " first, segments=" + Arrays.toString(segments)
+                + "ns, period=" + period + "ns]";
+    }
+}
@@ -0,0 +1,50 @@
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import riot.GPIO.State;
+
+/**
+ * A variant of the 'Blink' example that dims the LED on GPIO07/Pin 7 using software PWM. <br>
+ * The LED is driven by a {@link WaveformGenerator} at 1kHz, far faster than Akka's scheduler could toggle it. The Akka
+ * Stream only carries parameter updates: every two seconds, a new duty cycle is sent to the generator. Every five
+ * seconds, the timing statistics of the generator are logged.
+ */
+public class WaveformApplication {
+
+    public static void main(String[] args) throws InterruptedException {
+        ActorSystem system = ActorSystem.create("WaveformExample");
+        Materializer mat = ActorMaterializer.create(system);
+
+        // Create a waveform generator for GPIO pin 7, initially low:
+        WaveformGenerator gpio7 = new WaveformGenerator(7, Waveform.constant(State.LOW)).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                gpio7.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        // Cycle through several brightness levels, changing every 2 seconds. An explicit pulse schedule could be
+        // sent in the same way, e.g. Waveform.pulses(State.HIGH, Duration.ofMillis(1), Duration.ofMillis(9))
+        List<Double> dutyCycles = Arrays.asList(0.05, 0.25, 0.5, 0.75, 1.0, 0.0);
+        Source.cycle(dutyCycles::iterator)
+                .throttle(1, Duration.ofSeconds(2))
+                .map(dutyCycle -> Waveform.pwm(1000, dutyCycle))
+                .to(gpio7.asSink())
+                .run(mat);
+
+        // Regularly log how precisely the edges were timed:
+        Source.tick(Duration.ofSeconds(5), Duration.ofSeconds(5), "report")
+                .map(tick -> gpio7.stats())
+                .to(Sink.foreach(stats -> System.out.println("GPIO 7: " + stats)))
+                .run(mat);
+    }
+
+}
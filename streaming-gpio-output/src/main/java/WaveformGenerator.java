@@ -0,0 +1,163 @@
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.pi4j.wiringpi.Gpio;
+
+import akka.Done;
+import akka.stream.javadsl.Sink;
+
+/**
+ * Drives a GPIO pin with a {@link Waveform}, from a dedicated high-priority thread. <br>
+ * RIoT's GPIO actors are perfect for reacting to events, but each edge is then a message scheduled by Akka's
+ * tick-based scheduler, which is far too coarse for PWM or timed pulse trains. Here, only the waveform parameters go
+ * through Akka: the timing thread computes each edge's deadline from the previous one (so errors don't accumulate),
+ * sleeps until shortly before it, then spins until the exact time and writes the pin directly through WiringPi. <br>
+ * The timing loop does not allocate, so it cannot cause garbage collections by itself. It is still stopped by the
+ * collections the rest of the program causes, like every other Java thread: these pauses show up as lateness, or as
+ * resyncs when they last longer than a period. The lateness of each edge is recorded in a {@link JitterStats} object.
+ */
+public class WaveformGenerator {
+
+    /**
+     * The thread sleeps until this long before an edge is due, then spins. Sleeping any closer to the deadline would
+     * expose us to the OS scheduler's wake-up latency.
+     */
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * How long to sleep between checks for a new waveform, while outputting a constant level.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final int pin;
+    private final JitterStats stats = new JitterStats();
+    private final Thread thread;
+    private volatile Waveform requested;
+    private volatile boolean running;
+
+    /**
+     * @param pin
+     *            the GPIO number, using the same (WiringPi) numbering as RIoT's {@link riot.GPIO}
+     * @param initial
+     *            the waveform to output once started
+     */
+    public WaveformGenerator(int pin, Waveform initial) {
+        this.pin = pin;
+        this.requested = initial;
+        this.thread = new Thread(this::run, "waveform-gpio" + pin);
+        this.thread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    /**
+     * Sets up the pin as an output, and starts the timing thread.
+     */
+    public WaveformGenerator start() {
+        Gpio.wiringPiSetup();
+        Gpio.pinMode(pin, Gpio.OUTPUT);
+        running = true;
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Requests a new waveform. The current period is completed first, so that no truncated pulse is output.
+     */
+    public void set(Waveform waveform) {
+        requested = waveform;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * @return a Sink that applies each waveform it receives to this generator
+     */
+    public Sink<Waveform, CompletionStage<Done>> asSink() {
+        return Sink.foreach(this::set);
+    }
+
+    /**
+     * @return the timing statistics gathered since this generator was started
+     */
+    public JitterStats.Snapshot stats() {
+        return stats.snapshot();
+    }
+
+    /**
+     * Stops the timing thread, and leaves the pin low.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        Gpio.digitalWrite(pin, Gpio.LOW);
+    }
+
+    private void run() {
+        // Ask for real-time scheduling. This only works when running as root, and is harmless otherwise.
+        Gpio.piHiPri(99);
+
+        Waveform current = requested;
+        boolean level = current.initiallyHigh;
+        int segment = 0;
+        write(level);
+        long deadline = System.nanoTime();
+
+        while (running) {
+            if (current.segments.length == 0) {
+                // Constant level: nothing to time, just wait for the next waveform
+                if (requested == current) {
+                    LockSupport.parkNanos(IDLE_NANOS);
+                    continue;
+                }
+                current = requested;
+                level = current.initiallyHigh;
+                segment = 0;
+                write(level);
+                deadline = System.nanoTime();
+                continue;
+            }
+
+            deadline += current.segments[segment];
+            awaitDeadline(deadline);
+            if (!running) {
+                break;
+            }
+
+            if (++segment == current.segments.length) {
+                // End of a period: this is the only place where we switch to a new waveform
+                current = requested;
+                level = current.initiallyHigh;
+                segment = 0;
+            } else {
+                level = !level;
+            }
+            write(level);
+
+            final long now = System.nanoTime();
+            final long lateness = now - deadline;
+            stats.record(lateness);
+            if (current.period > 0 && lateness > current.period) {
+                stats.recordResync();
+                deadline = now;
+            }
+        }
+    }
+
+    private void awaitDeadline(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+            if (!running) {
+                // stop() was called: don't wait for the end of the segment
+                return;
+            }
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        }
+        while (deadline - System.nanoTime() > 0) {
+            // Busy-wait for the last few microseconds
+        }
+    }
+
+    private void write(boolean level) {
+        Gpio.digitalWrite(pin, level ? Gpio.HIGH : Gpio.LOW);
+    }
+}
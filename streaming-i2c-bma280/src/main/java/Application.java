@@ -2,13 +2,23 @@ import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.typesafe.config.Config;
 
 import akka.Done;
 import akka.NotUsed;
+import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
+import akka.http.javadsl.ConnectHttp;
+import akka.http.javadsl.Http;
 import akka.stream.ActorMaterializer;
 import akka.stream.Materializer;
+import akka.stream.OverflowStrategy;
+import akka.stream.javadsl.BroadcastHub;
 import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.RestartSource;
 import akka.stream.javadsl.Sink;
 import akka.stream.javadsl.Source;
 import riot.GPIO;
@@ -37,20 +47,59 @@ public class Application {
                 BMA280Constants.PowerMode.normal_Mode,
                 BMA280Constants.SleepDuration.sleep100ms);
 
-        Flow<BMA280.Command, BMA280.Results, NotUsed> bma280 = I2C
+        // The device actor performs blocking bus transactions: run it on the bus' own dispatcher (see
+        // application.conf), and have the stream wait for its replies without blocking a thread, for as long as the
+        // BMA280 protocol allows.
+        ActorRef bma280Actor = system.actorOf(I2C
                 .device(bma280config)
                 .onBus(1)
-                .at(BMA280Constants.DEFAULT_ADDRESS).asFlow(system);
+                .at(BMA280Constants.DEFAULT_ADDRESS).asProps()
+                .withDispatcher("i2c-bus-1-dispatcher"), "bma280");
+        Flow<BMA280.Command, BMA280.Results, NotUsed> bma280 = Flow.of(BMA280.Command.class)
+                .ask(1, bma280Actor, BMA280.Results.class, bma280config.getDescriptor().getTimeout());
+
+        // Regularly log how busy the I2C bus is:
+        MeteredExecutor.logEvery(system, system.settings().config().getDuration("bma280-demo.metrics-interval"));
 
         // Send a SELF-TEST, then a CALIBRATE command to it
         List<BMA280.Command> commands = Arrays.asList(BMA280.Command.SELFTEST, BMA280.Command.CALIBRATE);
-        Source.from(commands).via(bma280).to(Sink.ignore()).run(mat);
+        CompletionStage<Done> calibrated = Source.from(commands).via(bma280).runWith(Sink.ignore(), mat)
+                .exceptionally(failure -> {
+                    system.log().warning("BMA280 self-test or calibration failed: {}", failure.getMessage());
+                    return Done.getInstance();
+                });
+
+        // Now, let's set up a timer: Once both commands have been executed, send a READ command at the configured
+        // interval. The first READs would otherwise wait for the self-test in the bus' queue, and could time out.
+        Config settings = system.settings().config().getConfig("bma280-demo");
+        Source<BMA280.Command, ?> timerSource = Source.fromCompletionStage(calibrated)
+                .flatMapConcat(done -> Source.tick(Duration.ZERO, settings.getDuration("sample-interval"),
+                        BMA280.Command.READ));
 
-        // Now, let's set up a timer: Send a READ command every 500 millis
-        Source<BMA280.Command, ?> timerSource = Source.tick(Duration.ZERO, Duration.ofSeconds(1), BMA280.Command.READ);
+        // Regularly query, then print out the values measured by the BMA280: this is our recording path, which sees
+        // every sample. Printing runs asynchronously, so that a slow console doesn't hold up the next READ command.
+        // The samples are also published to a BroadcastHub for the telemetry dashboards. The dropping buffer in front
+        // of the hub ensures dashboards can never slow down acquisition or recording, even when none is connected.
+        // Samples are numbered first, so that dashboards can tell when some were dropped on their way.
+        // A failed READ (e.g. a bus error, or a timeout) fails the acquisition: it is logged, then restarted after a
+        // backoff, without completing the hub, so that the recording path and the connected dashboards carry on.
+        Config telemetry = settings.getConfig("telemetry");
+        AtomicLong sequence = new AtomicLong();
+        Source<BMA280.Results, NotUsed> acquisition = RestartSource.withBackoff(settings.getDuration("min-backoff"),
+                settings.getDuration("max-backoff"), 0.2, () -> timerSource.via(bma280));
+        Source<BMA280.Results, NotUsed> samples = acquisition
+                .map(results -> {
+                    results.sequence = sequence.getAndIncrement();
+                    return results;
+                })
+                .alsoTo(logSink.async())
+                .buffer(telemetry.getInt("buffer-size"), OverflowStrategy.dropHead())
+                .toMat(BroadcastHub.of(BMA280.Results.class, 256), Keep.right())
+                .run(mat);
 
-        // Regularly query, then print out the values measured by the BMA280
-        timerSource.via(bma280).to(logSink).run(mat);
+        // Serve the samples to remote dashboards over a WebSocket:
+        Http.get(system).bindAndHandle(new TelemetryServer(samples, telemetry).createRoute().flow(system, mat),
+                ConnectHttp.toHost(telemetry.getString("interface"), telemetry.getInt("port")), mat);
     }
 
 }
@@ -55,6 +55,17 @@ public class BMA280 implements I2CProtocol<BMA280.Command, BMA280.Results> {
          */
         float temp;
 
+        /**
+         * Time of the measurement (milliseconds since the epoch)
+         */
+        long timestamp;
+
+        /**
+         * Position of this measurement in the stream of samples, numbered by the application (the device leaves it
+         * at 0)
+         */
+        long sequence;
+
         @Override
         public String toString() {
             return String.format("BMA280.Results [x=% .04fg, y=% .04fg, z=% .04fg, temp=%.02f°C]", x, y, z, temp);
@@ -222,6 +233,7 @@ public class BMA280 implements I2CProtocol<BMA280.Command, BMA280.Results> {
             results.z = (float) rawZ * aRes / 4.0f;
             final byte rawTemp = data[BMA280Constants.ACCD_TEMP];
             results.temp = 0.5f * ((float) rawTemp) + 23.0f;
+            results.timestamp = System.currentTimeMillis();
         }
 
         return results;
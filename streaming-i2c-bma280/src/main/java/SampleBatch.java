@@ -0,0 +1,141 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import akka.util.ByteString;
+
+/**
+ * Accumulates BMA280 samples between two WebSocket frames, and encodes them as one compact binary frame. <br>
+ * A batch holds a bounded number of samples: if a client is so slow that more samples arrive between two of its
+ * frames, the oldest ones are dropped, and counted. Storage starts small and grows with the batch, so that a client
+ * receiving a few samples per frame doesn't cost a full-sized batch each time. <br>
+ * Samples can also be lost before they reach the client, in the shared buffer in front of the BroadcastHub, and these
+ * are not included in the dropped count. Every sample carries its sequence number instead: with decimation n, any
+ * step larger than n between two consecutive samples, within a frame or across frames, means samples were lost. <br>
+ * Frames are encoded in little-endian byte order, with a 24-byte header:
+ * <ul>
+ * <li>format version (1 byte, currently 2)</li>
+ * <li>reserved (1 byte)</li>
+ * <li>number of samples in this frame (2 bytes, unsigned)</li>
+ * <li>number of samples dropped from this client's batch since the previous frame (4 bytes)</li>
+ * <li>timestamp of the first sample (8 bytes, milliseconds since the epoch)</li>
+ * <li>sequence number of the first sample (8 bytes)</li>
+ * </ul>
+ * followed by 24 bytes per sample:
+ * <ul>
+ * <li>sequence number, relative to the first sample (4 bytes)</li>
+ * <li>timestamp, relative to the first sample (4 bytes, milliseconds)</li>
+ * <li>X, Y and Z acceleration (3 x 4 bytes, float, in G)</li>
+ * <li>temperature (4 bytes, float, in °C)</li>
+ * </ul>
+ */
+public class SampleBatch {
+
+    static final byte VERSION = 2;
+    static final int HEADER_SIZE = 24;
+    static final int SAMPLE_SIZE = 24;
+
+    /**
+     * Largest number of samples per frame: the count is encoded on 2 bytes.
+     */
+    static final int MAX_CAPACITY = 65535;
+
+    /**
+     * Initial number of samples a batch has room for. Storage then doubles as needed, up to the batch's capacity.
+     */
+    private static final int INITIAL_SIZE = 16;
+
+    private final int capacity;
+    private long[] sequence;
+    private long[] timestamp;
+    private float[] x;
+    private float[] y;
+    private float[] z;
+    private float[] temp;
+    private int first;
+    private int count;
+    private int dropped;
+
+    /**
+     * @param capacity
+     *            maximum number of samples per frame (at most {@link #MAX_CAPACITY})
+     */
+    public SampleBatch(int capacity) {
+        this.capacity = capacity;
+        allocate(Math.min(INITIAL_SIZE, capacity));
+    }
+
+    /**
+     * Adds a sample to this batch, dropping the oldest one if the batch is full.
+     *
+     * @return this batch
+     */
+    public SampleBatch add(BMA280.Results sample) {
+        if (count == timestamp.length) {
+            if (count < capacity) {
+                grow();
+            } else {
+                first = (first + 1) % count;
+                count--;
+                dropped++;
+            }
+        }
+        final int i = (first + count) % timestamp.length;
+        sequence[i] = sample.sequence;
+        timestamp[i] = sample.timestamp;
+        x[i] = sample.x;
+        y[i] = sample.y;
+        z[i] = sample.z;
+        temp[i] = sample.temp;
+        count++;
+        return this;
+    }
+
+    /**
+     * @return this batch, encoded as a binary frame
+     */
+    public ByteString toByteString() {
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * SAMPLE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        final long firstSequence = sequence[first];
+        final long start = timestamp[first];
+        buffer.put(VERSION);
+        buffer.put((byte) 0);
+        buffer.putShort((short) count);
+        buffer.putInt(dropped);
+        buffer.putLong(start);
+        buffer.putLong(firstSequence);
+        for (int n = 0; n < count; n++) {
+            final int i = (first + n) % timestamp.length;
+            buffer.putInt((int) (sequence[i] - firstSequence));
+            buffer.putInt((int) (timestamp[i] - start));
+            buffer.putFloat(x[i]);
+            buffer.putFloat(y[i]);
+            buffer.putFloat(z[i]);
+            buffer.putFloat(temp[i]);
+        }
+        return ByteString.fromArrayUnsafe(buffer.array());
+    }
+
+    private void allocate(int size) {
+        sequence = new long[size];
+        timestamp = new long[size];
+        x = new float[size];
+        y = new float[size];
+        z = new float[size];
+        temp = new float[size];
+    }
+
+    /**
+     * Doubles the storage, up to the capacity. Only called when the batch is full, which means no sample has been
+     * dropped yet: the samples are still in order from index 0.
+     */
+    private void grow() {
+        final int size = Math.min(timestamp.length * 2, capacity);
+        sequence = Arrays.copyOf(sequence, size);
+        timestamp = Arrays.copyOf(timestamp, size);
+        x = Arrays.copyOf(x, size);
+        y = Arrays.copyOf(y, size);
+        z = Arrays.copyOf(z, size);
+        temp = Arrays.copyOf(temp, size);
+    }
+}
@@ -0,0 +1,81 @@
+import java.time.Duration;
+
+import com.typesafe.config.Config;
+
+import akka.NotUsed;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.ws.BinaryMessage;
+import akka.http.javadsl.model.ws.Message;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.Route;
+import akka.http.javadsl.unmarshalling.StringUnmarshallers;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+
+/**
+ * Streams BMA280 samples to remote dashboards over a WebSocket, on the path '/telemetry'. <br>
+ * Samples are sent in batches, as binary frames (see {@link SampleBatch} for the format). Each client can ask for
+ * decimation (only every n-th sample is sent) and for a maximum frame rate, with the 'decimate' and 'max-fps' query
+ * parameters, e.g. <code>ws://raspberrypi:8080/telemetry?decimate=10&amp;max-fps=5</code>. <br>
+ * Between two frames, samples are accumulated in a batch by a conflate stage, which never backpressures: a slow client
+ * only ever receives larger frames, and at worst loses samples from its own batch. It can't slow down acquisition.
+ * Samples lost anywhere on their way, including the shared buffer in front of the hub, show up as gaps in the sequence
+ * numbers the frames carry.
+ */
+public class TelemetryServer extends AllDirectives {
+
+    private final Source<BMA280.Results, NotUsed> samples;
+    private final int defaultMaxFps;
+    private final int maxSamplesPerFrame;
+
+    /**
+     * @param samples
+     *            a Source which can be materialized once per client, typically from a BroadcastHub
+     */
+    public TelemetryServer(Source<BMA280.Results, NotUsed> samples, Config config) {
+        this.samples = samples;
+        this.defaultMaxFps = config.getInt("default-max-fps");
+        this.maxSamplesPerFrame = config.getInt("max-samples-per-frame");
+        if (maxSamplesPerFrame < 1 || maxSamplesPerFrame > SampleBatch.MAX_CAPACITY) {
+            throw new IllegalArgumentException("max-samples-per-frame must be between 1 and "
+                    + SampleBatch.MAX_CAPACITY + ": " + maxSamplesPerFrame);
+        }
+    }
+
+    /**
+     * @return an Akka HTTP Route object serving the '/telemetry' WebSocket
+     */
+    public Route createRoute() {
+        return path("telemetry", () ->
+                parameterOptional(StringUnmarshallers.INTEGER, "decimate", decimate ->
+                        parameterOptional(StringUnmarshallers.INTEGER, "max-fps", maxFps ->
+                                telemetry(decimate.orElse(1), maxFps.orElse(defaultMaxFps))
+                        )
+                )
+        );
+    }
+
+    private Route telemetry(int decimate, int maxFps) {
+        if (decimate < 1 || maxFps < 1) {
+            return complete(StatusCodes.BAD_REQUEST, "decimate and max-fps must be positive");
+        }
+
+        final Source<Message, NotUsed> frames = samples
+                .via(decimation(decimate))
+                .conflateWithSeed(sample -> new SampleBatch(maxSamplesPerFrame).add(sample), SampleBatch::add)
+                .throttle(maxFps, Duration.ofSeconds(1))
+                .map(batch -> (Message) BinaryMessage.create(batch.toByteString()));
+
+        // Messages sent by the client are ignored. Closing the WebSocket stops the frames.
+        return handleWebSocketMessages(Flow.fromSinkAndSourceCoupled(Sink.ignore(), frames));
+    }
+
+    /**
+     * @return a Flow letting only every n-th sample through, based on sequence numbers: the samples a client receives
+     *         are then one step of n apart, unless some were lost on the way
+     */
+    private static Flow<BMA280.Results, BMA280.Results, NotUsed> decimation(int n) {
+        return Flow.of(BMA280.Results.class).filter(sample -> sample.sequence % n == 0);
+    }
+}